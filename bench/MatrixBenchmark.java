@@ -0,0 +1,430 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmarks every MatrixManager command on a synthetic graph.
+ * Each operation is timed on its own over several measured iterations after a warmup,
+ * so a regression shows up for the command that caused it instead of a whole test file.
+ *
+ * Parameters are given as key=value pairs:
+ * hosts, edges, degree (uniform or skewed), sealed (ratio of sealed backdoors), seed,
+ * warmup, iterations, operations (calls per iteration) and only (run a single operation).
+ */
+public class MatrixBenchmark {
+
+    private final int hostCount;
+    private final int edgeCount;
+    private final boolean skewed; // Concentrate the edges on a few hub hosts
+    private final double sealedRatio;
+    private final int warmup;
+    private final int iterations;
+    private final int operations;
+    private final Random random;
+
+    private final String[] hostIDs;
+    private final int[] clearance;
+    private int[] edgeFirst; // Endpoints and attributes of the generated backdoors
+    private int[] edgeSecond;
+    private int[] edgeLatency;
+    private int[] edgeBandwidth;
+    private int[] edgeFirewall;
+
+    private final CountingOutputStream sink = new CountingOutputStream();
+    private final ResponseWriter out = new ResponseWriter(sink);
+
+    /**
+     * Constructor to generate the synthetic graph.
+     */
+    MatrixBenchmark(int hostCount, int edgeCount, boolean skewed, double sealedRatio, long seed,
+                    int warmup, int iterations, int operations) {
+        this.hostCount = hostCount;
+        this.skewed = skewed;
+        this.sealedRatio = sealedRatio;
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.operations = operations;
+        this.random = new Random(seed);
+
+        // A simple graph cannot have more edges than host pairs
+        long maxEdges = (long) hostCount * (hostCount - 1) / 2;
+        this.edgeCount = (int) Math.min(edgeCount, maxEdges);
+
+        this.hostIDs = new String[hostCount];
+        this.clearance = new int[hostCount];
+        for (int i = 0; i < hostCount; i++) {
+            hostIDs[i] = "H" + i;
+            clearance[i] = 1 + random.nextInt(5);
+        }
+        generateEdges();
+    }
+
+    /**
+     * Picks distinct host pairs and random attributes for every backdoor.
+     */
+    private void generateEdges() {
+        edgeFirst = new int[edgeCount];
+        edgeSecond = new int[edgeCount];
+        edgeLatency = new int[edgeCount];
+        edgeBandwidth = new int[edgeCount];
+        edgeFirewall = new int[edgeCount];
+
+        HashSet<Long> used = new HashSet<>();
+        int count = 0;
+        while (count < edgeCount) {
+            int first = pickHost();
+            int second = pickHost();
+            if (first == second) {
+                continue;
+            }
+            long key = (long) Math.min(first, second) * hostCount + Math.max(first, second);
+            if (!used.add(key)) {
+                continue;
+            }
+            edgeFirst[count] = first;
+            edgeSecond[count] = second;
+            edgeLatency[count] = 1 + random.nextInt(100);
+            edgeBandwidth[count] = 50 * (1 + random.nextInt(4));
+            edgeFirewall[count] = 1 + random.nextInt(5);
+            count++;
+        }
+    }
+
+    /**
+     * Picks a host, either uniformly or biased towards low indices for a skewed degree distribution.
+     * @return The host index.
+     */
+    private int pickHost() {
+        if (!skewed) {
+            return random.nextInt(hostCount);
+        }
+        double r = random.nextDouble();
+        return (int) (hostCount * r * r * r);
+    }
+
+    /**
+     * Creates a manager holding every generated host and backdoor, with the requested share sealed.
+     * @return The populated manager.
+     */
+    private MatrixManager buildGraph() throws IOException {
+        MatrixManager manager = spawnAll();
+        for (int i = 0; i < edgeCount; i++) {
+            link(manager, i);
+        }
+        int sealedCount = (int) (edgeCount * sealedRatio);
+        for (int i = 0; i < sealedCount; i++) {
+            manager.sealBackdoor(hostIDs[edgeFirst[i]], hostIDs[edgeSecond[i]], out);
+            out.endResponse();
+        }
+        return manager;
+    }
+
+    /**
+     * Creates a manager holding every generated host and no backdoors.
+     * @return The populated manager.
+     */
+    private MatrixManager spawnAll() throws IOException {
+        MatrixManager manager = new MatrixManager();
+        for (int i = 0; i < hostCount; i++) {
+            manager.spawnHost(hostIDs[i], clearance[i], out);
+            out.endResponse();
+        }
+        return manager;
+    }
+
+    /**
+     * Adds one generated backdoor to a manager.
+     */
+    private void link(MatrixManager manager, int edge) {
+        manager.linkBackdoor(hostIDs[edgeFirst[edge]], hostIDs[edgeSecond[edge]],
+                edgeLatency[edge], edgeBandwidth[edge], edgeFirewall[edge], out);
+    }
+
+    /**
+     * Runs every benchmark, or only the one with the given name.
+     * @param only The operation to run, or null for all of them.
+     */
+    public void runAll(String only) throws IOException {
+        System.out.printf("hosts=%d edges=%d degree=%s sealed=%.2f warmup=%d iterations=%d operations=%d%n",
+                hostCount, edgeCount, skewed ? "skewed" : "uniform", sealedRatio, warmup, iterations, operations);
+        System.out.printf("%-26s %12s %12s %12s%n", "operation", "mean us/op", "min us/op", "max us/op");
+
+        // Commands that grow the graph start from a fresh manager in every iteration
+        if (only == null || only.equals("spawn_host")) {
+            measure("spawn_host", new Operation() {
+                MatrixManager manager;
+                public int prepare() {
+                    manager = new MatrixManager();
+                    return hostCount;
+                }
+                public void run(int i) {
+                    manager.spawnHost(hostIDs[i], clearance[i], out);
+                }
+            });
+        }
+        if (only == null || only.equals("link_backdoor")) {
+            measure("link_backdoor", new Operation() {
+                MatrixManager manager;
+                public int prepare() throws IOException {
+                    manager = spawnAll();
+                    return edgeCount;
+                }
+                public void run(int i) {
+                    link(manager, i);
+                }
+            });
+        }
+        if (edgeCount == 0) {
+            return;
+        }
+
+        // Queries run against one shared graph
+        final MatrixManager manager = buildGraph();
+        final int[] first = new int[operations];
+        final int[] second = new int[operations];
+        final int[] edges = new int[operations];
+
+        if (only == null || only.equals("seal_backdoor")) {
+            measure("seal_backdoor", new Operation() {
+                public int prepare() {
+                    // Every backdoor is toggled twice in a row so the graph ends as it started
+                    for (int i = 0; i < operations; i++) {
+                        edges[i] = (i % 2 == 0) ? random.nextInt(edgeCount) : edges[i - 1];
+                    }
+                    return operations - operations % 2;
+                }
+                public void run(int i) {
+                    manager.sealBackdoor(hostIDs[edgeFirst[edges[i]]], hostIDs[edgeSecond[edges[i]]], out);
+                }
+            });
+        }
+        for (final int lambda : new int[]{0, 2}) {
+            String name = "trace_route lambda=" + lambda;
+            if (only == null || only.equals("trace_route")) {
+                measure(name, new Operation() {
+                    public int prepare() {
+                        fillRandomPairs(first, second);
+                        return operations;
+                    }
+                    public void run(int i) {
+                        int minBandwidth = (i % 2 == 0) ? 0 : 100;
+                        manager.traceRoute(hostIDs[first[i]], hostIDs[second[i]], minBandwidth, lambda, out);
+                    }
+                });
+            }
+        }
+        for (final int lambda : new int[]{0, 2}) {
+            String name = "trace_routes lambda=" + lambda;
+            if (only == null || only.equals("trace_routes")) {
+                final String[] destinations = new String[16];
+                measure(name, new Operation() {
+                    public int prepare() {
+                        fillRandomPairs(first, second);
+                        return operations;
+                    }
+                    public void run(int i) {
+                        // Each batch reuses the pairs after i as its destinations
+                        for (int k = 0; k < destinations.length; k++) {
+                            destinations[k] = hostIDs[second[(i + k) % operations]];
+                        }
+                        manager.traceRoutes(hostIDs[first[i]], 0, lambda, destinations, destinations.length, out);
+                    }
+                });
+            }
+        }
+        if (only == null || only.equals("widest_path")) {
+            measure("widest_path", new Operation() {
+                public int prepare() {
+                    fillRandomPairs(first, second);
+                    return operations;
+                }
+                public void run(int i) {
+                    manager.widestPath(hostIDs[first[i]], hostIDs[second[i]], out);
+                }
+            });
+        }
+        if (only == null || only.equals("scan_connectivity")) {
+            measure("scan_connectivity", new Operation() {
+                public int prepare() {
+                    return operations;
+                }
+                public void run(int i) {
+                    manager.scanConnectivity(out);
+                }
+            });
+        }
+        if (only == null || only.equals("simulate_breach")) {
+            measure("simulate_breach host", new Operation() {
+                public int prepare() {
+                    fillRandomPairs(first, second);
+                    return operations;
+                }
+                public void run(int i) {
+                    manager.simulateBreach(hostIDs[first[i]], out);
+                }
+            });
+            measure("simulate_breach backdoor", new Operation() {
+                public int prepare() {
+                    for (int i = 0; i < operations; i++) {
+                        edges[i] = random.nextInt(edgeCount);
+                    }
+                    return operations;
+                }
+                public void run(int i) {
+                    manager.simulateBreach(hostIDs[edgeFirst[edges[i]]], hostIDs[edgeSecond[edges[i]]], out);
+                }
+            });
+            // Alternate a topology change with each query so cached analyses have to be rebuilt
+            measure("simulate_breach after seal", new Operation() {
+                public int prepare() {
+                    for (int i = 0; i < operations; i++) {
+                        edges[i] = random.nextInt(edgeCount);
+                    }
+                    fillRandomPairs(first, second);
+                    return operations;
+                }
+                public void run(int i) {
+                    manager.sealBackdoor(hostIDs[edgeFirst[edges[i]]], hostIDs[edgeSecond[edges[i]]], out);
+                    manager.simulateBreach(hostIDs[first[i]], out);
+                    manager.sealBackdoor(hostIDs[edgeFirst[edges[i]]], hostIDs[edgeSecond[edges[i]]], out);
+                }
+            });
+        }
+        if (only == null || only.equals("oracle_report")) {
+            measure("oracle_report", new Operation() {
+                public int prepare() {
+                    return operations;
+                }
+                public void run(int i) {
+                    manager.oracleReport(out);
+                }
+            });
+        }
+        out.flush();
+        System.out.println("response bytes: " + sink.count); // Keeps the responses observable
+    }
+
+    /**
+     * Fills two arrays with random host indices.
+     */
+    private void fillRandomPairs(int[] first, int[] second) {
+        for (int i = 0; i < first.length; i++) {
+            first[i] = random.nextInt(hostCount);
+            second[i] = random.nextInt(hostCount);
+        }
+    }
+
+    /**
+     * Times one operation: untimed warmup iterations followed by measured ones.
+     * @param name The name printed in the report.
+     * @param operation The operation to time.
+     */
+    private void measure(String name, Operation operation) throws IOException {
+        for (int iteration = 0; iteration < warmup; iteration++) {
+            runIteration(operation);
+        }
+        double total = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            double perOperation = runIteration(operation);
+            total += perOperation;
+            min = Math.min(min, perOperation);
+            max = Math.max(max, perOperation);
+        }
+        System.out.printf("%-26s %12.3f %12.3f %12.3f%n", name, total / iterations, min, max);
+    }
+
+    /**
+     * Prepares and runs one iteration of an operation.
+     * @return The average time of one call in microseconds.
+     */
+    private double runIteration(Operation operation) throws IOException {
+        int calls = operation.prepare();
+        if (calls == 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            operation.run(i);
+            out.endResponse();
+        }
+        long elapsed = System.nanoTime() - start;
+        return elapsed / 1000.0 / calls;
+    }
+
+    /**
+     * One benchmarked command.
+     */
+    private interface Operation {
+        /**
+         * Sets up an iteration outside of the timed section.
+         * @return The number of calls to time.
+         */
+        int prepare() throws IOException;
+
+        /**
+         * Performs one call.
+         * @param i The index of the call within the iteration.
+         */
+        void run(int i);
+    }
+
+    /**
+     * Output stream that only counts the bytes written to it.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Locale.setDefault(Locale.US);
+        int hosts = 10000;
+        int edges = 30000;
+        boolean skewed = false;
+        double sealed = 0.1;
+        long seed = 42;
+        int warmup = 3;
+        int iterations = 5;
+        int operations = 1000;
+        String only = null;
+
+        for (String argument : args) {
+            int separator = argument.indexOf('=');
+            if (separator < 0) {
+                System.err.println("Arguments must look like key=value: " + argument);
+                System.exit(1);
+            }
+            String key = argument.substring(0, separator);
+            String value = argument.substring(separator + 1);
+            switch (key) {
+                case "hosts": hosts = Integer.parseInt(value); break;
+                case "edges": edges = Integer.parseInt(value); break;
+                case "degree": skewed = value.equals("skewed"); break;
+                case "sealed": sealed = Double.parseDouble(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "warmup": warmup = Integer.parseInt(value); break;
+                case "iterations": iterations = Integer.parseInt(value); break;
+                case "operations": operations = Integer.parseInt(value); break;
+                case "only": only = value; break;
+                default:
+                    System.err.println("Unknown parameter: " + key);
+                    System.exit(1);
+            }
+        }
+
+        new MatrixBenchmark(hosts, edges, skewed, sealed, seed, warmup, iterations, operations).runAll(only);
+    }
+}